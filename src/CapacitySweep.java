@@ -0,0 +1,176 @@
+import java.io.FileNotFoundException;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+// This class answers capacity planning questions such as "how many units of resource 2 are needed to keep the total
+// wait under 10% with Banker's". The input is parsed once, and then for every resource type and both algorithms the
+// number of initial units of that resource is swept from 1 up to the point where it can no longer make a difference,
+// while the other resources keep their values from the input. Every point of the sweep is an independent run, so
+// the runs are spread over a thread pool with one thread per core.
+public class CapacitySweep {
+
+    ResourceAllocation scenario; // The parsed input. Its activities are shared read-only by every run.
+    ExecutorService pool;
+    // Runs already submitted, keyed by algorithm and unit vector. The input's own vector is part of every resource's
+    // sweep, so it is only run once per algorithm.
+    Map<String, Future<ResourceAllocation.RunSummary>> runs = new ConcurrentHashMap<>();
+
+    public CapacitySweep(ResourceAllocation scenario, ExecutorService pool) {
+        this.scenario = scenario;
+        this.pool = pool;
+    }
+
+    // This method submits a run for the given units, unless the same run has already been submitted.
+    private Future<ResourceAllocation.RunSummary> submit(ResourceAllocation.Algo algo, List<Integer> units) {
+        return runs.computeIfAbsent(algo + " " + units, key -> pool.submit(() -> {
+            ResourceAllocation run = new ResourceAllocation(scenario);
+            run.reset(units);
+            run.process(algo);
+            return run.summarize();
+        }));
+    }
+
+    // This method finds the number of units of a resource type above which adding more cannot change a run. For FIFO
+    // that is the sum of all requests for it: every request can then be granted as soon as it is made, so the
+    // resource never blocks a task. For Banker's it is the sum of the claims on it. A task's holding plus what it
+    // releases or requests in a cycle never exceeds its claim, so the units kept from any one task by the others are
+    // at most the sum of their claims. With the sum of all the claims, every task's claim and remaining need are then
+    // covered by what is available, so the resource never causes an abort at initiate, a block or a failed safety
+    // check, and the run is the same as with any more units.
+    int saturation(ResourceAllocation.Algo algo, int resourceType) {
+        int requested = 0, claimed = 0;
+        for (List<ResourceAllocation.Activity> activities : scenario.taskActivities) {
+            for (ResourceAllocation.Activity activity : activities) {
+                if (activity.param2 != resourceType)
+                    continue;
+                if ("request".equalsIgnoreCase(activity.act))
+                    requested += activity.param3;
+                else if ("initiate".equalsIgnoreCase(activity.act))
+                    claimed += activity.param3;
+            }
+        }
+        int limit = algo.equals(ResourceAllocation.Algo.optimistic) ? requested : claimed;
+        return Math.max(limit, 1);
+    }
+
+    // This method finds the number of units of a resource type below which Banker's rejects every task at initiate.
+    // That is the smallest claim on the resource, as long as every task claims it before doing anything but other
+    // initiates, so that no task holds or releases anything before it is rejected. Otherwise it returns 0.
+    int rejectAllBelow(int resourceType) {
+        int smallestClaim = Integer.MAX_VALUE;
+        for (List<ResourceAllocation.Activity> activities : scenario.taskActivities) {
+            int claim = 0;
+            for (ResourceAllocation.Activity activity : activities) {
+                if (!"initiate".equalsIgnoreCase(activity.act))
+                    break;
+                if (activity.param2 == resourceType) {
+                    claim = activity.param3;
+                    break;
+                }
+            }
+            smallestClaim = Math.min(smallestClaim, claim);
+        }
+        return smallestClaim == Integer.MAX_VALUE ? 0 : smallestClaim;
+    }
+
+    // This method submits the sweep of the units of one resource type, one run per unit count starting at 1, and
+    // returns the futures of the curve without waiting for them. Points beyond the saturation point are settled by
+    // the run at the saturation point, and for Banker's the points where every task is rejected at initiate are known
+    // without running them, so neither is run.
+    List<Future<ResourceAllocation.RunSummary>> sweep(ResourceAllocation.Algo algo, int resourceType) {
+        int limit = saturation(algo, resourceType);
+        int given = scenario.initialAvailability.get(resourceType - 1);
+        int rejectAllBelow = algo.equals(ResourceAllocation.Algo.bankers) ? rejectAllBelow(resourceType) : 0;
+        List<Future<ResourceAllocation.RunSummary>> futures = new ArrayList<>();
+        for (int units = 1; units <= Math.max(limit, given); units++) {
+            if (units < rejectAllBelow) {
+                ResourceAllocation.RunSummary summary = new ResourceAllocation.RunSummary();
+                summary.aborted = scenario.taskActivities.size();
+                summary.rejected = summary.aborted;
+                futures.add(CompletableFuture.completedFuture(summary));
+                continue;
+            }
+            List<Integer> vector = new ArrayList<>(scenario.initialAvailability);
+            vector.set(resourceType - 1, Math.min(units, limit));
+            futures.add(submit(algo, vector));
+        }
+        return futures;
+    }
+
+    // This method returns the smallest unit count from which on every point of the curve meets the target: the wait
+    // percentage is at most the target and no more tasks are aborted than with unlimited units. A point where every
+    // task was aborted has no wait percentage and never meets the target. It returns -1 if even the last point does
+    // not meet it.
+    static int minimumUnits(List<ResourceAllocation.RunSummary> curve, int targetWaitPercent) {
+        int leastAborted = curve.get(curve.size() - 1).aborted;
+        int minimum = -1;
+        for (int i = curve.size() - 1; i >= 0; i--) {
+            ResourceAllocation.RunSummary summary = curve.get(i);
+            if (!summary.hasWaitPercent() || summary.waitPercent() > targetWaitPercent
+                    || summary.aborted > leastAborted)
+                break;
+            minimum = i + 1;
+        }
+        return minimum;
+    }
+
+    // This method waits for the curve of one sweep and prints it.
+    private static void printSweep(ResourceAllocation.Algo algo, int resourceType,
+                                   List<Future<ResourceAllocation.RunSummary>> futures, int targetWaitPercent)
+            throws InterruptedException, ExecutionException {
+        List<ResourceAllocation.RunSummary> curve = new ArrayList<>(futures.size());
+        for (Future<ResourceAllocation.RunSummary> future : futures)
+            curve.add(future.get());
+        System.out.println((algo.equals(ResourceAllocation.Algo.optimistic) ? "FIFO" : "BANKER'S")
+                + ", resource " + resourceType);
+        System.out.println();
+        System.out.println("units" + '\t' + "total" + '\t' + "wait" + '\t' + "wait%" + '\t' + "aborted");
+        for (int i = 0; i < curve.size(); i++) {
+            ResourceAllocation.RunSummary summary = curve.get(i);
+            System.out.println((i + 1) + "\t" + summary.totalTime + '\t' + summary.waitingTime + '\t'
+                    + summary.formatWaitPercent() + '\t' + summary.aborted);
+        }
+        int minimum = minimumUnits(curve, targetWaitPercent);
+        if (minimum == -1)
+            System.out.println("target not reachable by adding units of resource " + resourceType);
+        else
+            System.out.println("minimum units for target: " + minimum);
+        System.out.println();
+    }
+
+    // Usage: java ResourceAllocation <input file path> --sweep <target wait percentage>
+    public static void main(String args[]) throws FileNotFoundException {
+        String input = args[0];
+        int targetWaitPercent = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        ResourceAllocation scenario = new ResourceAllocation();
+        scenario.verbose = false;
+        scenario.readInput(input);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        CapacitySweep capacitySweep = new CapacitySweep(scenario, pool);
+        System.out.println("Capacity Sweep Output (target wait " + targetWaitPercent + "%)");
+        System.out.println("--------------------------------------");
+        System.out.println();
+        try {
+            // All the sweeps are submitted before any is waited for, so the pool always has every pending run to
+            // work on.
+            ResourceAllocation.Algo[] algos = {ResourceAllocation.Algo.optimistic, ResourceAllocation.Algo.bankers};
+            int numResourceTypes = scenario.initialAvailability.size();
+            List<List<Future<ResourceAllocation.RunSummary>>> sweeps = new ArrayList<>();
+            for (ResourceAllocation.Algo algo : algos) {
+                for (int resourceType = 1; resourceType <= numResourceTypes; resourceType++)
+                    sweeps.add(capacitySweep.sweep(algo, resourceType));
+            }
+            for (int i = 0; i < sweeps.size(); i++) {
+                printSweep(algos[i / numResourceTypes], i % numResourceTypes + 1, sweeps.get(i),
+                        targetWaitPercent);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
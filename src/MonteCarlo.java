@@ -0,0 +1,189 @@
+import java.io.FileNotFoundException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// This class measures how sensitive a scenario is to small timing changes. It replays the scenario N times with seeded
+// random perturbations and reports the spread of the results for FIFO and Banker's. Each replay may:
+//  - make every compute activity up to one cycle shorter or longer,
+//  - queue the tasks in a shuffled order at the start, since all tasks have the same priority,
+//  - change the initial units of each resource by up to one, but never below the largest single claim on it (or the
+//    input's own units, if those are already below it), so Banker's does not reject tasks at initiate only because
+//    the perturbation made the input invalid. Tasks that Banker's still rejects at initiate are counted apart from
+//    the tasks aborted while running.
+// Replay i uses the same order, units and compute lengths under both algorithms so the two are compared on the same
+// perturbations. The compute jitter is drawn up front for every task and activity, so it does not depend on the order
+// in which the activities happen to run.
+//
+// The input is parsed once and its activities are shared read-only by all the replays. The replays are spread over
+// one worker per core, each of which runs one replay at a time and keeps only its few result numbers, so the live
+// simulation state does not grow with N.
+public class MonteCarlo {
+
+    ResourceAllocation scenario;
+    long seed;
+    List<Integer> minimumUnits; // The lowest units each resource may be perturbed to(resource num = index).
+
+    public MonteCarlo(ResourceAllocation scenario, long seed) {
+        this.scenario = scenario;
+        this.seed = seed;
+        minimumUnits = new ArrayList<>(scenario.initialAvailability.size());
+        for (int units : scenario.initialAvailability)
+            minimumUnits.add(Math.min(units, 1));
+        for (List<ResourceAllocation.Activity> activities : scenario.taskActivities) {
+            for (ResourceAllocation.Activity activity : activities) {
+                if ("initiate".equalsIgnoreCase(activity.act)) {
+                    int resource = activity.param2 - 1;
+                    int floor = Math.min(scenario.initialAvailability.get(resource), activity.param3);
+                    minimumUnits.set(resource, Math.max(minimumUnits.get(resource), floor));
+                }
+            }
+        }
+    }
+
+    // The results of all the replays of one algorithm, indexed by replay. A replay in which every task was aborted has
+    // no wait percentage, so NaN is stored for it.
+    static class Samples {
+        double[] totalTime;
+        double[] waitPercent;
+        double[] aborted; // Tasks aborted while running.
+        double[] rejected; // Tasks rejected by Banker's at initiate.
+
+        Samples(int n) {
+            totalTime = new double[n];
+            waitPercent = new double[n];
+            aborted = new double[n];
+            rejected = new double[n];
+        }
+    }
+
+    // This method runs replay number run of the scenario under the given algorithm and stores its results.
+    private void replay(ResourceAllocation.Algo algo, int run, Samples samples) {
+        Random random = new Random(seed * 1000003 + run);
+        List<Integer> units = new ArrayList<>(scenario.initialAvailability);
+        for (int i = 0; i < units.size(); i++)
+            units.set(i, Math.max(minimumUnits.get(i), units.get(i) + random.nextInt(3) - 1));
+        List<Integer> order = new ArrayList<>(scenario.taskActivities.size());
+        for (int i = 0; i < scenario.taskActivities.size(); i++)
+            order.add(i);
+        Collections.shuffle(order, random);
+
+        ResourceAllocation replay = new ResourceAllocation(scenario);
+        replay.reset(units);
+        replay.taskOrder = order;
+        int[][] jitter = new int[scenario.taskActivities.size()][];
+        for (int i = 0; i < jitter.length; i++) {
+            jitter[i] = new int[scenario.taskActivities.get(i).size()];
+            for (int j = 0; j < jitter[i].length; j++)
+                jitter[i][j] = random.nextInt(3) - 1;
+        }
+        replay.computeJitter = jitter;
+        replay.process(algo);
+
+        ResourceAllocation.RunSummary summary = replay.summarize();
+        samples.totalTime[run] = summary.totalTime;
+        samples.waitPercent[run] = summary.hasWaitPercent() ? summary.waitingTime * 100.0 / summary.totalTime
+                : Double.NaN;
+        samples.aborted[run] = summary.aborted - summary.rejected;
+        samples.rejected[run] = summary.rejected;
+    }
+
+    // This method runs n replays under the given algorithm on one worker thread per core. The workers take the next
+    // replay number from a shared counter until all n are done.
+    Samples run(ResourceAllocation.Algo algo, int n) throws InterruptedException, ExecutionException {
+        Samples samples = new Samples(n);
+        AtomicInteger next = new AtomicInteger();
+        int numWorkers = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+        try {
+            List<Future<?>> workers = new ArrayList<>(numWorkers);
+            for (int i = 0; i < numWorkers; i++) {
+                workers.add(pool.submit(() -> {
+                    for (int run = next.getAndIncrement(); run < n; run = next.getAndIncrement())
+                        replay(algo, run, samples);
+                }));
+            }
+            for (Future<?> worker : workers)
+                worker.get();
+        } finally {
+            pool.shutdown();
+        }
+        return samples;
+    }
+
+    // This method prints the mean with its 95% confidence interval and the 5th, 50th and 95th percentiles of a metric.
+    // NaN values, for replays without a value, are left out.
+    private static void printStats(String name, double[] samples) {
+        double[] values = Arrays.stream(samples).filter(value -> !Double.isNaN(value)).toArray();
+        int n = values.length;
+        if (n == 0) {
+            System.out.println(name + '\t' + "n/a");
+            return;
+        }
+        double mean = 0;
+        for (double value : values)
+            mean += value;
+        mean /= n;
+        double variance = 0;
+        for (double value : values)
+            variance += (value - mean) * (value - mean);
+        variance = n > 1 ? variance / (n - 1) : 0;
+        double halfWidth = 1.96 * Math.sqrt(variance / n);
+
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        System.out.println(name + '\t' + String.format("%.2f", mean) + '\t'
+                + String.format("[%.2f, %.2f]", mean - halfWidth, mean + halfWidth) + '\t'
+                + String.format("%.2f", percentile(sorted, 5)) + '\t'
+                + String.format("%.2f", percentile(sorted, 50)) + '\t'
+                + String.format("%.2f", percentile(sorted, 95)));
+    }
+
+    // Nearest-rank percentile of already sorted values.
+    static double percentile(double[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    // Usage: java ResourceAllocation <input file path> --montecarlo <number of replays> [seed]
+    public static void main(String args[]) throws FileNotFoundException {
+        String input = args[0];
+        int n = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        if (n < 1) {
+            System.err.println("The number of replays must be at least 1.");
+            System.err.println("Usage: java ResourceAllocation <input file path> --montecarlo <number of replays>"
+                    + " [seed]");
+            System.exit(1);
+        }
+
+        ResourceAllocation scenario = new ResourceAllocation();
+        scenario.verbose = false;
+        scenario.readInput(input);
+        MonteCarlo monteCarlo = new MonteCarlo(scenario, seed);
+
+        System.out.println("Monte Carlo Output (" + n + " replays, seed " + seed + ")");
+        System.out.println("--------------------------------------");
+        System.out.println();
+        try {
+            for (ResourceAllocation.Algo algo : new ResourceAllocation.Algo[]{ResourceAllocation.Algo.optimistic,
+                    ResourceAllocation.Algo.bankers}) {
+                Samples samples = monteCarlo.run(algo, n);
+                System.out.println(algo.equals(ResourceAllocation.Algo.optimistic) ? "FIFO" : "BANKER'S");
+                System.out.println();
+                System.out.println("metric" + '\t' + "mean" + '\t' + "95% CI" + '\t' + "p5" + '\t' + "p50" + '\t'
+                        + "p95");
+                printStats("total", samples.totalTime);
+                printStats("wait%", samples.waitPercent);
+                printStats("aborted", samples.aborted);
+                printStats("rejected", samples.rejected);
+                long allAborted = Arrays.stream(samples.waitPercent).filter(Double::isNaN).count();
+                System.out.println("replays with every task aborted (left out of wait%)" + '\t' + allAborted);
+                System.out.println();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -1,18 +1,20 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
 
 
 /**
  * Created by anish on 4/12/17.
  */
-// This class contains the combined code for the optimistic resource manager, as well as the Banker's algorithm. The
-// process method takes an argument specifying which algorithm should be used and then accordingly calls the respective
-// methods.
+// This class contains the combined code for the optimistic resource manager, as well as the Banker's algorithm and a
+// hybrid of the two. The process method takes an argument specifying which algorithm should be used and then
+// accordingly calls the respective methods.
 public class ResourceAllocation {
 
     enum Algo {
-        optimistic, bankers
+        optimistic, bankers, hybrid
     }
 
     // Every input activity is broken down into its components and stored as an object of this class
@@ -42,6 +44,8 @@ public class ResourceAllocation {
         int activityNum = 0;
         int computeRemaining = 0;
         boolean aborted = false;
+        boolean rejected = false; // Aborted by Banker's at initiate because its claim exceeded the units present.
+        boolean blockedOnAvailability = false; // Whether the pending request has been counted in availabilityBlocks.
         boolean terminated = false;
         boolean compute = false;
 
@@ -63,6 +67,56 @@ public class ResourceAllocation {
     Queue<Integer> runningTasks; // A queue for the tasks that have the resources they currently require.
     Queue<Integer> blockedTasks; // A queue for the tasks that could not be granted their resource in the prev cycle.
     int cycle = 0;
+    List<Integer> safeSequence = new ArrayList<>(); // The order in which the last passed safety check let the tasks
+    // finish. The hybrid algorithm tries it again before running the safety check.
+    // Counts of distinct hybrid requests, each counted once however many cycles it was retried: the ones granted
+    // because every task could finish on its own, the ones granted because the last safe sequence still works, the
+    // ones granted after passing the safety check, and the ones that were blocked at least once because fewer units
+    // were available than requested.
+    int headroomGrants = 0;
+    int sequenceGrants = 0;
+    int safetyCheckedGrants = 0;
+    int availabilityBlocks = 0;
+    int safetyCheckRuns = 0; // How many times the hybrid algorithm ran the safety check, denials and retries included.
+    boolean verbose = true; // Whether the Banker's abort messages are printed. Turned off for batch runs.
+    TraceRecorder recorder; // If set, the state at the end of every cycle is recorded to a trace file.
+    List<Integer> taskOrder; // If set, the order in which the tasks are first queued. Otherwise it is by task num.
+    int[][] computeJitter; // If set, the cycles added to each compute activity(task num, activity num = indexes).
+
+    List<Integer> initialAvailability; // The resource units given in the header line of the input.
+    List<List<Activity>> taskActivities; // The parsed activities of each task(task num = index). These are only read
+    // after parsing, so they are shared between runs of the same scenario.
+
+    // A summary of a finished run, used when many runs are compared instead of printed.
+    static class RunSummary {
+        int totalTime;
+        int waitingTime;
+        int aborted;
+        int rejected; // The aborted tasks that Banker's rejected at initiate rather than during the run.
+
+        // Whether any task finished. If every task was aborted there is no wait percentage.
+        boolean hasWaitPercent() {
+            return totalTime > 0;
+        }
+
+        long waitPercent() {
+            return Math.round(waitingTime * 100.0 / totalTime);
+        }
+
+        String formatWaitPercent() {
+            return hasWaitPercent() ? waitPercent() + "%" : "n/a";
+        }
+    }
+
+    public ResourceAllocation() {
+    }
+
+    // Creates a manager for the same scenario as an already parsed one without reading the input again.
+    ResourceAllocation(ResourceAllocation scenario) {
+        this.initialAvailability = scenario.initialAvailability;
+        this.taskActivities = scenario.taskActivities;
+        this.verbose = scenario.verbose;
+    }
 
     // This is the method that simulates the cpu/manager. It looks at the inputs(activities) of a task and accordingly
     // takes actions. It works on top of the two queues: runningTasks and blockedTasks. Every outer iteration is a
@@ -76,9 +130,13 @@ public class ResourceAllocation {
     // lowest numbered task is aborted. Finally, the resources released during this cycle are added to the available
     // list so that they can be used next cycle. Further, the method takes the algorithm type as input and accordingly
     // performs some actions.
-    private void process(Algo algo) {
-        for (int i = 0; i < taskList.size(); i++)
-            runningTasks.offer(i);
+    void process(Algo algo) {
+        if (taskOrder != null)
+            runningTasks.addAll(taskOrder);
+        else {
+            for (int i = 0; i < taskList.size(); i++)
+                runningTasks.offer(i);
+        }
 
         while (!runningTasks.isEmpty() || !blockedTasks.isEmpty()) {
 
@@ -93,7 +151,7 @@ public class ResourceAllocation {
                 if (algo.equals(Algo.optimistic))
                     tryAllocationForFifo(task, activity);
                 else
-                    tryAllocationForBankers(task, activity);
+                    tryAllocationForBankers(task, activity, algo);
             }
 
             for (int i = 0; i < numRunning; i++) {
@@ -115,12 +173,14 @@ public class ResourceAllocation {
                     int resourceType = activity.param2;
                     int claim = activity.param3;
                     int avail = resourceAvailability.get(resourceType - 1);
-                    if (algo.equals(Algo.bankers) && claim > avail) {
-                        System.out.println("Banker aborts task " + taskList.indexOf(task) + " before run begins:\n" +
-                                "       claim for resource " + resourceType + " (" + claim + ") exceeds number of " +
-                                "units present (" + avail + ")");
+                    if (!algo.equals(Algo.optimistic) && claim > avail) {
+                        if (verbose)
+                            System.out.println("Banker aborts task " + taskList.indexOf(task) + " before run " +
+                                    "begins:\n       claim for resource " + resourceType + " (" + claim + ") exceeds " +
+                                    "number of units present (" + avail + ")");
                         terminateTask(task);
                         task.aborted = true;
+                        task.rejected = true;
                     } else {
                         task.claims.set(activity.param2 - 1, activity.param3);
                         task.activityNum++;
@@ -133,7 +193,7 @@ public class ResourceAllocation {
                     if (algo.equals(Algo.optimistic))
                         tryAllocationForFifo(task, activity);
                     else
-                        tryAllocationForBankers(task, activity);
+                        tryAllocationForBankers(task, activity, algo);
                 } else if ("release".equalsIgnoreCase(activity.act)) {
                     int resourceType = activity.param2;
                     int numReleasing = activity.param3;
@@ -148,6 +208,8 @@ public class ResourceAllocation {
                         runningTasks.offer(taskList.indexOf(task));
                 } else if ("compute".equalsIgnoreCase(activity.act)) {
                     int numCycles = activity.param2;
+                    if (computeJitter != null)
+                        numCycles = Math.max(1, numCycles + computeJitter[taskList.indexOf(task)][task.activityNum]);
                     task.compute = true;
                     task.computeRemaining = numCycles - 1;
                     task.activityNum++;
@@ -167,6 +229,9 @@ public class ResourceAllocation {
                 abortLowestTask();
             }
 
+            if (recorder != null)
+                recorder.record(this);
+
             // Transfer all the resources released during this cycle to the available list.
             for (int i = 0; i < resourceReleased.size(); i++) {
                 int available = resourceAvailability.get(i);
@@ -239,16 +304,19 @@ public class ResourceAllocation {
     // This method does the resource allocation for Banker's. It first has an error check where it checks if the
     // request is greater than that task's initial claim. If it is then an error message is printed and the task is
     // aborted. If it isn't then it checks whether on granting this request the system is in a safe state or not. If it
-    // isn't, then the task isn't granted its request and blocked, else the request is granted.
-    private void tryAllocationForBankers(Task task, Activity activity) {
+    // isn't, then the task isn't granted its request and blocked, else the request is granted. For the hybrid algorithm
+    // the safety check is skipped when one of the cheaper tests already shows the state is safe, see hasHeadroom and
+    // followsSafeSequence.
+    private void tryAllocationForBankers(Task task, Activity activity, Algo algo) {
         int resourceType = activity.param2;
         int numRequested = activity.param3;
         int alreadyHolding = task.holding.get(resourceType - 1);
 
         if (numRequested + alreadyHolding > task.claims.get(resourceType - 1)) {
-            System.out.println("During cycle " + cycle + "-" + (cycle + 1) + " of Banker's algorithms\n" +
-                    "   Task " + (taskList.indexOf(task) + 1) + "'s request exceeds its claim; aborted; " +
-                    alreadyHolding + " units available next cycle");
+            if (verbose)
+                System.out.println("During cycle " + cycle + "-" + (cycle + 1) + " of Banker's algorithms\n" +
+                        "   Task " + (taskList.indexOf(task) + 1) + "'s request exceeds its claim; aborted; " +
+                        alreadyHolding + " units available next cycle");
             terminateTask(task);
             task.aborted = true;
             return;
@@ -257,7 +325,28 @@ public class ResourceAllocation {
         int available = resourceAvailability.get(resourceType - 1);
 
         // Checking for safe state in this condition.
-        if (available >= numRequested && isSafeState(task, resourceType, numRequested)) {
+        boolean safe = false;
+        if (available >= numRequested) {
+            if (algo.equals(Algo.hybrid) && hasHeadroom(task, resourceType, numRequested)) {
+                headroomGrants++;
+                safe = true;
+            } else if (algo.equals(Algo.hybrid) && followsSafeSequence(task, resourceType, numRequested)) {
+                sequenceGrants++;
+                safe = true;
+            } else {
+                safe = isSafeState(task, resourceType, numRequested);
+                if (algo.equals(Algo.hybrid)) {
+                    safetyCheckRuns++;
+                    if (safe)
+                        safetyCheckedGrants++;
+                }
+            }
+        } else if (algo.equals(Algo.hybrid) && !task.blockedOnAvailability) {
+            availabilityBlocks++;
+            task.blockedOnAvailability = true;
+        }
+        if (safe) {
+            task.blockedOnAvailability = false;
 
             task.holding.set(resourceType - 1, alreadyHolding + numRequested);
             resourceAvailability.set(resourceType - 1, available - numRequested);
@@ -288,6 +377,7 @@ public class ResourceAllocation {
         int resourceCurrAvail = available.get(resourceType - 1);
         available.set(resourceType - 1, resourceCurrAvail - numRequested);
         List<Integer> taskPool = new ArrayList<>();
+        List<Integer> sequence = new ArrayList<>();
         for (int i = 0; i < taskList.size(); i++) {
             if (!taskList.get(i).terminated && !taskList.get(i).aborted)
                 taskPool.add(i);
@@ -312,7 +402,7 @@ public class ResourceAllocation {
                     for (int k = 0; k < available.size(); k++) {
                         available.set(k, available.get(k) + currTask.holding.get(k));
                     }
-                    taskPool.remove(i);
+                    sequence.add(taskPool.remove(i));
                     success = true;
                     break;
                 }
@@ -320,6 +410,62 @@ public class ResourceAllocation {
         }
 
         task.holding.set(resourceType - 1, alreadyHolding);
+        safeSequence = sequence;
+        return true;
+    }
+
+    // This method checks if, after granting the request, the live tasks could still finish one after the other in the
+    // order the last passed safety check found. If so, the state is safe. Unlike isSafeState it does not search for
+    // the next task that can finish, it only walks the old order once. Tasks that finished since then are skipped, and
+    // the order does not help if it misses a live task.
+    private boolean followsSafeSequence(Task requester, int resourceType, int numRequested) {
+        int[] available = new int[resourceAvailability.size()];
+        for (int j = 0; j < available.length; j++)
+            available[j] = resourceAvailability.get(j);
+        available[resourceType - 1] -= numRequested;
+
+        int numFollowed = 0;
+        for (int taskNum : safeSequence) {
+            Task task = taskList.get(taskNum);
+            if (task.terminated || task.aborted)
+                continue;
+            int granted = task == requester ? numRequested : 0;
+            for (int j = 0; j < available.length; j++) {
+                int need = task.claims.get(j) - task.holding.get(j) - (j == resourceType - 1 ? granted : 0);
+                if (need > available[j])
+                    return false;
+            }
+            for (int j = 0; j < available.length; j++)
+                available[j] += task.holding.get(j) + (j == resourceType - 1 ? granted : 0);
+            numFollowed++;
+        }
+        for (Task task : taskList) {
+            if (!task.terminated && !task.aborted)
+                numFollowed--;
+        }
+        return numFollowed == 0;
+    }
+
+    // This method checks if, after granting the request, the available units of every resource type would cover the
+    // largest remaining need (claim minus holding) of any live task, the requesting task's need being reduced by the
+    // request. Then every task could run to its claim on its own, so the tasks can finish in any order and the state
+    // is safe without running the safety check. It looks at each task once, instead of repeatedly searching for a
+    // task that can finish like isSafeState does.
+    private boolean hasHeadroom(Task requester, int resourceType, int numRequested) {
+        for (int j = 0; j < resourceAvailability.size(); j++) {
+            int available = resourceAvailability.get(j);
+            if (j == resourceType - 1)
+                available -= numRequested;
+            for (Task task : taskList) {
+                if (task.terminated || task.aborted)
+                    continue;
+                int need = task.claims.get(j) - task.holding.get(j);
+                if (task == requester && j == resourceType - 1)
+                    need -= numRequested;
+                if (need > available)
+                    return false;
+            }
+        }
         return true;
     }
 
@@ -339,27 +485,76 @@ public class ResourceAllocation {
         return "terminate".equalsIgnoreCase(task.activities.get(task.activityNum).act);
     }
 
-    public static void main(String args[]) throws FileNotFoundException {
+    public static void main(String args[]) throws IOException {
         String input = args[0];
+        if (args.length > 1 && "--sweep".equals(args[1])) {
+            CapacitySweep.main(args);
+            return;
+        }
+        if (args.length > 1 && "--montecarlo".equals(args[1])) {
+            MonteCarlo.main(args);
+            return;
+        }
+        String tracePrefix = null;
+        for (int i = 1; i + 1 < args.length; i++) {
+            if ("--trace".equals(args[i]))
+                tracePrefix = args[i + 1];
+        }
         ResourceAllocation resourceAllocation = new ResourceAllocation();
         resourceAllocation.readInput(input);
         System.out.println("Optimistic Resource Management Output");
         System.out.println("--------------------------------------");
+        resourceAllocation.startTrace(tracePrefix, Algo.optimistic);
         resourceAllocation.process(Algo.optimistic);
+        resourceAllocation.stopTrace();
         System.out.println();
         resourceAllocation.printOutput(Algo.optimistic);
         System.out.println();
 
-        resourceAllocation.readInput(input);
+        resourceAllocation.reset(resourceAllocation.initialAvailability);
         System.out.println("Banker's Algorithm Output");
         System.out.println("--------------------------------------");
+        resourceAllocation.startTrace(tracePrefix, Algo.bankers);
         resourceAllocation.process(Algo.bankers);
+        resourceAllocation.stopTrace();
         System.out.println();
         resourceAllocation.printOutput(Algo.bankers);
+
+        if (Arrays.asList(args).contains("--hybrid")) {
+            System.out.println();
+            resourceAllocation.reset(resourceAllocation.initialAvailability);
+            System.out.println("Hybrid Algorithm Output");
+            System.out.println("--------------------------------------");
+            resourceAllocation.startTrace(tracePrefix, Algo.hybrid);
+            resourceAllocation.process(Algo.hybrid);
+            resourceAllocation.stopTrace();
+            System.out.println();
+            resourceAllocation.printOutput(Algo.hybrid);
+            System.out.println("requests granted on headroom" + '\t' + resourceAllocation.headroomGrants);
+            System.out.println("requests granted on last safe sequence" + '\t' + resourceAllocation.sequenceGrants);
+            System.out.println("requests granted after safety check" + '\t' + resourceAllocation.safetyCheckedGrants);
+            System.out.println("requests blocked on availability" + '\t' + resourceAllocation.availabilityBlocks);
+            System.out.println("safety check runs" + '\t' + resourceAllocation.safetyCheckRuns);
+        }
+    }
+
+    // This method starts recording the next run to <prefix>-<algo>.trace, if a trace prefix was given.
+    private void startTrace(String tracePrefix, Algo algo) throws IOException {
+        if (tracePrefix != null)
+            recorder = new TraceRecorder(Paths.get(tracePrefix + "-" + algo + ".trace"), taskList.size(),
+                    resourceAvailability.size());
+    }
+
+    private void stopTrace() throws IOException {
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
     }
 
     private void printOutput(Algo algo) {
         if (algo.equals(Algo.optimistic)) System.out.println("FIFO");
+        else if (algo.equals(Algo.hybrid)) System.out.println("HYBRID");
         else System.out.println("BANKER'S");
         System.out.println();
         int totalRun = 0, totalWait = 0;
@@ -378,32 +573,69 @@ public class ResourceAllocation {
                 + Math.round(totalWait * 100.0 / totalRun) + "%");
     }
 
+    // This method collects the totals of a finished run, the same way printOutput does, without printing them.
+    RunSummary summarize() {
+        RunSummary summary = new RunSummary();
+        for (Task task : taskList) {
+            if (task.rejected)
+                summary.rejected++;
+            if (task.aborted)
+                summary.aborted++;
+            else {
+                summary.totalTime += task.totalTime;
+                summary.waitingTime += task.waitingTime;
+            }
+        }
+        return summary;
+    }
+
     // This is the method that parses the input and initializes and assigns values to all the data structures.
-    private void readInput(String input) throws FileNotFoundException {
+    void readInput(String input) throws FileNotFoundException {
         Scanner sc = new Scanner(new File(input));
         int numTasks = sc.nextInt();
-        taskList = new ArrayList<>(numTasks);
-
-        runningTasks = new LinkedList<>();
-        blockedTasks = new LinkedList<>();
-        cycle = 0;
 
         int numResourceTypes = sc.nextInt();
-        resourceAvailability = new ArrayList<>(numResourceTypes);
-        resourceReleased = new ArrayList<>(numResourceTypes);
-        for (int i = 0; i < numResourceTypes; i++) {
-            resourceAvailability.add(sc.nextInt());
-            resourceReleased.add(0);
-        }
+        initialAvailability = new ArrayList<>(numResourceTypes);
+        for (int i = 0; i < numResourceTypes; i++)
+            initialAvailability.add(sc.nextInt());
 
-        for (int i = 0; i < numTasks; i++) {
-            taskList.add(new Task(numResourceTypes));
-        }
+        taskActivities = new ArrayList<>(numTasks);
+        for (int i = 0; i < numTasks; i++)
+            taskActivities.add(new ArrayList<>());
 
         while (sc.hasNext()) {
             Activity activity = new Activity(sc.next(), sc.nextInt(), sc.nextInt(), sc.nextInt());
-            taskList.get(activity.taskNum - 1).activities.add(activity);
+            taskActivities.get(activity.taskNum - 1).add(activity);
         }
 
+        reset(initialAvailability);
+    }
+
+    // This method sets up fresh tasks and queues for a new run of the parsed input, starting with the given number of
+    // units of each resource type. The parsed activities are shared, not copied.
+    void reset(List<Integer> units) {
+        int numResourceTypes = units.size();
+        taskList = new ArrayList<>(taskActivities.size());
+
+        runningTasks = new LinkedList<>();
+        blockedTasks = new LinkedList<>();
+        cycle = 0;
+
+        resourceAvailability = new ArrayList<>(units);
+        resourceReleased = new ArrayList<>(numResourceTypes);
+        for (int i = 0; i < numResourceTypes; i++)
+            resourceReleased.add(0);
+        headroomGrants = 0;
+        sequenceGrants = 0;
+        safetyCheckedGrants = 0;
+        availabilityBlocks = 0;
+        safetyCheckRuns = 0;
+        safeSequence = new ArrayList<>();
+
+        for (List<Activity> activities : taskActivities) {
+            Task task = new Task(numResourceTypes);
+            task.activities = activities;
+            taskList.add(task);
+        }
     }
 }
@@ -0,0 +1,146 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+// This class reads a trace written by TraceRecorder. Looking up a cycle does not replay the cycles before it: the block
+// holding the cycle is found from the block index, only that block is read, and only the requested column of it is
+// decoded. Blocks are read into a buffer rather than mapped, so the reader holds no mapping of the file. Tasks and
+// resources are numbered from 0 here, like the lists of the manager.
+public class TraceReader implements Closeable {
+
+    private FileChannel channel;
+    private int numTasks;
+    private int numResources;
+    private int blockCycles;
+    private int numCycles;
+    private long indexOffset;
+    private long[] blockOffsets;
+    private ByteBuffer block; // The last block looked up, kept since lookups tend to stay near each other.
+    private int blockNum = -1;
+
+    public TraceReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(TraceRecorder.HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != TraceRecorder.MAGIC)
+            throw new IOException(path + " is not a trace file");
+        numTasks = header.getInt();
+        numResources = header.getInt();
+        blockCycles = header.getInt();
+        numCycles = header.getInt();
+        indexOffset = header.getLong();
+
+        int numBlocks = (numCycles + blockCycles - 1) / blockCycles;
+        ByteBuffer index = ByteBuffer.allocate(8 * numBlocks);
+        channel.read(index, indexOffset);
+        index.flip();
+        blockOffsets = new long[numBlocks];
+        for (int i = 0; i < numBlocks; i++)
+            blockOffsets[i] = index.getLong();
+    }
+
+    public int getNumTasks() {
+        return numTasks;
+    }
+
+    public int getNumResources() {
+        return numResources;
+    }
+
+    public int getNumCycles() {
+        return numCycles;
+    }
+
+    // Returns one of the task states defined in TraceRecorder.
+    public int taskState(int cycle, int taskNum) throws IOException {
+        return value(cycle, taskNum);
+    }
+
+    public int available(int cycle, int resourceNum) throws IOException {
+        return value(cycle, numTasks + resourceNum);
+    }
+
+    public int released(int cycle, int resourceNum) throws IOException {
+        return value(cycle, numTasks + numResources + resourceNum);
+    }
+
+    // This method finds the value of a column at a cycle. It reads the block holding the cycle, jumps to the column
+    // using the block's offset table, and then adds up the run lengths until the run covering the cycle is reached.
+    private int value(int cycle, int column) throws IOException {
+        if (cycle < 0 || cycle >= numCycles)
+            throw new IndexOutOfBoundsException("cycle " + cycle + " is not in the trace of " + numCycles + " cycles");
+        int num = cycle / blockCycles;
+        if (num != blockNum) {
+            long end = num + 1 < blockOffsets.length ? blockOffsets[num + 1] : indexOffset;
+            int size = (int) (end - blockOffsets[num]);
+            if (block == null || block.capacity() < size)
+                block = ByteBuffer.allocate(size);
+            block.clear().limit(size);
+            while (block.hasRemaining()) {
+                if (channel.read(block, blockOffsets[num] + block.position()) < 0)
+                    throw new IOException("trace file ends inside block " + num);
+            }
+            blockNum = num;
+        }
+        int row = cycle % blockCycles;
+        ByteBuffer runs = block.duplicate();
+        runs.position(block.getInt(4 + 4 * column));
+        int value = 0;
+        int covered = 0;
+        while (covered <= row) {
+            value += TraceRecorder.unzigzag(TraceRecorder.getVarint(runs));
+            covered += TraceRecorder.getVarint(runs);
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        block = null;
+        channel.close();
+    }
+
+    private static String stateName(int state) {
+        switch (state) {
+            case TraceRecorder.RUNNING:
+                return "running";
+            case TraceRecorder.COMPUTING:
+                return "computing";
+            case TraceRecorder.BLOCKED:
+                return "blocked";
+            case TraceRecorder.TERMINATED:
+                return "terminated";
+            default:
+                return "aborted";
+        }
+    }
+
+    // Usage: java TraceReader <trace file path> <cycle>
+    public static void main(String args[]) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java TraceReader <trace file path> <cycle>");
+            System.exit(1);
+        }
+        int cycle = Integer.parseInt(args[1]);
+        try (TraceReader reader = new TraceReader(Paths.get(args[0]))) {
+            if (cycle < 0 || cycle >= reader.getNumCycles()) {
+                System.err.println("The cycle must be between 0 and " + (reader.getNumCycles() - 1) + ".");
+                System.err.println("Usage: java TraceReader <trace file path> <cycle>");
+                System.exit(1);
+            }
+            System.out.println("Cycle " + cycle + "-" + (cycle + 1) + " of " + reader.getNumCycles());
+            System.out.println();
+            for (int i = 0; i < reader.getNumTasks(); i++)
+                System.out.println("Task " + (i + 1) + '\t' + stateName(reader.taskState(cycle, i)));
+            for (int i = 0; i < reader.getNumResources(); i++)
+                System.out.println("Resource " + (i + 1) + '\t' + "available " + reader.available(cycle, i) + '\t'
+                        + "released " + reader.released(cycle, i));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+
+// This class records the state of the manager at the end of every cycle into a binary trace file that can later be
+// read back with TraceReader. It is cheap enough to leave on for big runs: nothing is formatted as text, a cycle only
+// copies a few ints into an in-memory block, and finished blocks are collected in a large buffer that is written out
+// with a single call once it is full.
+//
+// The trace is columnar. There is one column per task holding its state, one per resource holding its available count
+// and one per resource holding the count released during the cycle. The cycles are grouped into blocks of
+// BLOCK_CYCLES, and inside a block every column is run-length encoded, each run being stored as the (zigzag varint)
+// delta from the previous run's value followed by its length. Every block starts with a table of its column offsets
+// and the file ends with an index of the block offsets, so a reader can go straight to any cycle and decode just the
+// one column it needs from a single block.
+//
+// File layout: header | block | block | ... | block offset index
+// header: magic, numTasks, numResources, BLOCK_CYCLES, numCycles (ints), index offset (long)
+// block:  number of cycles in it (int), column offsets relative to the block start (int per column), column runs
+public class TraceRecorder implements Closeable {
+
+    static final int MAGIC = 0x52415452;
+    static final int HEADER_SIZE = 28;
+    static final int BLOCK_CYCLES = 64;
+
+    // The task states stored in the task columns.
+    static final int RUNNING = 0;
+    static final int COMPUTING = 1;
+    static final int BLOCKED = 2;
+    static final int TERMINATED = 3;
+    static final int ABORTED = 4;
+
+    private FileChannel channel;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private ByteBuffer buffer; // Encoded blocks that have not been written out yet.
+    private int maxBlockSize; // The most bytes a block can take when encoded.
+    private long end = HEADER_SIZE; // The offset just past the last block written out.
+    private int numTasks;
+    private int numResources;
+    private int[][] block; // The cycles of the block being filled, by column and then by cycle.
+    private int rows = 0;
+    private int numCycles = 0;
+    private List<Long> blockOffsets = new ArrayList<>();
+
+    public TraceRecorder(Path path, int numTasks, int numResources) throws IOException {
+        this.numTasks = numTasks;
+        this.numResources = numResources;
+        block = new int[numTasks + 2 * numResources][BLOCK_CYCLES];
+        maxBlockSize = 4 + 4 * block.length + 10 * block.length * BLOCK_CYCLES;
+        buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, maxBlockSize));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // This method is called by the manager at the end of every cycle, before the released resources are added to the
+    // available ones, so that both counts of the cycle are recorded.
+    void record(ResourceAllocation manager) {
+        for (int i = 0; i < numTasks; i++) {
+            ResourceAllocation.Task task = manager.taskList.get(i);
+            if (task.aborted)
+                block[i][rows] = ABORTED;
+            else if (task.terminated)
+                block[i][rows] = TERMINATED;
+            else if (task.compute)
+                block[i][rows] = COMPUTING;
+            else
+                block[i][rows] = RUNNING;
+        }
+        for (int taskNum : manager.blockedTasks)
+            block[taskNum][rows] = BLOCKED;
+        for (int i = 0; i < numResources; i++) {
+            block[numTasks + i][rows] = manager.resourceAvailability.get(i);
+            block[numTasks + numResources + i][rows] = manager.resourceReleased.get(i);
+        }
+        rows++;
+        numCycles++;
+        if (rows == BLOCK_CYCLES)
+            writeBlock();
+    }
+
+    // This method encodes the filled rows of the current block at the end of the output buffer, writing the buffer
+    // out first if the block might not fit.
+    private void writeBlock() {
+        int numColumns = block.length;
+        if (buffer.remaining() < maxBlockSize)
+            flush();
+        int base = buffer.position();
+        blockOffsets.add(end + base);
+        buffer.putInt(rows);
+        buffer.position(base + 4 + 4 * numColumns);
+        for (int c = 0; c < numColumns; c++) {
+            buffer.putInt(base + 4 + 4 * c, buffer.position() - base);
+            int[] column = block[c];
+            int previous = 0;
+            for (int i = 0; i < rows; ) {
+                int value = column[i];
+                int run = 1;
+                while (i + run < rows && column[i + run] == value)
+                    run++;
+                putVarint(buffer, zigzag(value - previous));
+                putVarint(buffer, run);
+                previous = value;
+                i += run;
+            }
+        }
+        rows = 0;
+    }
+
+    // This method writes out the blocks collected in the output buffer.
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining())
+                end += channel.write(buffer, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    // This method writes the last partial block and the remaining buffered blocks, and then the block index and the
+    // header.
+    @Override
+    public void close() throws IOException {
+        if (rows > 0)
+            writeBlock();
+        flush();
+
+        ByteBuffer index = ByteBuffer.allocate(8 * blockOffsets.size());
+        for (long offset : blockOffsets)
+            index.putLong(offset);
+        index.flip();
+        channel.write(index, end);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(numTasks).putInt(numResources).putInt(BLOCK_CYCLES).putInt(numCycles)
+                .putLong(end);
+        header.flip();
+        channel.write(header, 0);
+        channel.close();
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+}